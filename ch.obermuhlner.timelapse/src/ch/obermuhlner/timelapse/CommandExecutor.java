@@ -11,6 +11,7 @@ public class CommandExecutor {
 	private List<String> command;
 	private String directory;
 	private CommandExecutorListener listener;
+	private volatile int exitValue = -1;
 
 	public CommandExecutor(List<String> command, String directory, CommandExecutorListener listener) {
 		this.command = command;
@@ -22,14 +23,20 @@ public class CommandExecutor {
 		new Thread(() -> run()).start(); 
 	}
 
+	/**
+	 * Runs the command and blocks until it is finished.
+	 *
+	 * If the thread is interrupted the process is destroyed and the interrupt flag of the thread is restored.
+	 */
 	public void run() {
+		Process process = null;
 		try {
 			ProcessBuilder processBuilder = new ProcessBuilder(command);
 			if (directory != null) {
 				processBuilder.directory(new File(directory));
 			}
 			
-			Process process = processBuilder.start();
+			process = processBuilder.start();
 			
 			BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
 			BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
@@ -53,33 +60,40 @@ public class CommandExecutor {
 				Thread.sleep(1);
 			}
 			
-			process.waitFor();
-			
-			if (error.ready()) {
+			exitValue = process.waitFor();
+
+			line = error.readLine();
+			while (line != null) {
+				listener.addError(line + "\n");
+
 				line = error.readLine();
-				while (line != null) {
-					listener.addOutput(line + "\n");
-					
-					line = error.readLine();
-				}
 			}
-			
-			if (output.ready()) {
-				while (line != null) {
-					listener.addError(line + "\n");
-					
-					line = output.readLine();
-				}
+
+			line = output.readLine();
+			while (line != null) {
+				listener.addOutput(line + "\n");
+
+				line = output.readLine();
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			if (process != null) {
+				process.destroy();
+			}
+			Thread.currentThread().interrupt();
 		} finally {
 			listener.finished();
 		}
 	}
 
+	/**
+	 * Returns the exit value of the finished process, or -1 if the process could not be run.
+	 */
+	public int getExitValue() {
+		return exitValue;
+	}
+
 	public static interface CommandExecutorListener {
 		void addOutput(String output);
 		void addError(String error);
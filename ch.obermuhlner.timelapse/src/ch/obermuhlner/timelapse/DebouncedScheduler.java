@@ -0,0 +1,86 @@
+package ch.obermuhlner.timelapse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs a computation in the background after a quiet period.
+ *
+ * Scheduling a new computation cancels the pending one and discards the result of a computation that is already running,
+ * so that rapid changes collapse into a single computation and only the latest result is delivered.
+ */
+public class DebouncedScheduler {
+
+	private final long delayMillis;
+	private final Executor resultExecutor;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "debounced-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private ScheduledFuture<?> future;
+	private long generation;
+
+	/**
+	 * @param delayMillis the quiet period in milliseconds before the computation starts
+	 * @param resultExecutor the executor that delivers the result, for example <code>Platform::runLater</code>
+	 */
+	public DebouncedScheduler(long delayMillis, Executor resultExecutor) {
+		this.delayMillis = delayMillis;
+		this.resultExecutor = resultExecutor;
+	}
+
+	/**
+	 * Schedules the computation, cancelling the pending one.
+	 *
+	 * @param computation the computation to run in the background
+	 * @param resultConsumer receives the result of the computation
+	 * @param errorConsumer receives the exception if the computation failed
+	 */
+	public synchronized <T> void schedule(Supplier<T> computation, Consumer<T> resultConsumer, Consumer<RuntimeException> errorConsumer) {
+		long scheduledGeneration = ++generation;
+
+		if (future != null) {
+			future.cancel(true);
+		}
+
+		future = executor.schedule(() -> {
+			if (!isCurrent(scheduledGeneration)) {
+				return;
+			}
+
+			try {
+				T result = computation.get();
+
+				resultExecutor.execute(() -> {
+					if (isCurrent(scheduledGeneration)) {
+						resultConsumer.accept(result);
+					}
+				});
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+
+				resultExecutor.execute(() -> {
+					if (isCurrent(scheduledGeneration)) {
+						errorConsumer.accept(e);
+					}
+				});
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized boolean isCurrent(long scheduledGeneration) {
+		return scheduledGeneration == generation;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,216 @@
+package ch.obermuhlner.timelapse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class FfmpegCapabilities {
+
+	private static final String KEY_BINARY = "binary";
+	private static final String KEY_MODIFIED = "modified";
+	private static final String KEY_VERSION = "version";
+	private static final String KEY_ENCODERS = "encoders";
+	private static final String KEY_FILTERS = "filters";
+	private static final String KEY_PIXEL_FORMATS = "pixelFormats";
+
+	private final String version;
+	private final Set<String> encoders;
+	private final Set<String> filters;
+	private final Set<String> pixelFormats;
+
+	public FfmpegCapabilities(String version, Set<String> encoders, Set<String> filters, Set<String> pixelFormats) {
+		this.version = version;
+		this.encoders = Collections.unmodifiableSet(new TreeSet<>(encoders));
+		this.filters = Collections.unmodifiableSet(new TreeSet<>(filters));
+		this.pixelFormats = Collections.unmodifiableSet(new TreeSet<>(pixelFormats));
+	}
+
+	public boolean isAvailable() {
+		return version != null;
+	}
+
+	/**
+	 * Returns whether the version and all listings could be parsed.
+	 *
+	 * Incomplete capabilities (for example after a transient failure of one probe command) must not be cached.
+	 */
+	public boolean isComplete() {
+		return isAvailable() && !encoders.isEmpty() && !filters.isEmpty() && !pixelFormats.isEmpty();
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public Set<String> getEncoders() {
+		return encoders;
+	}
+
+	public Set<String> getFilters() {
+		return filters;
+	}
+
+	public Set<String> getPixelFormats() {
+		return pixelFormats;
+	}
+
+	public boolean hasEncoder(String encoder) {
+		return encoders.contains(encoder);
+	}
+
+	public boolean hasFilter(String filter) {
+		return filters.contains(filter);
+	}
+
+	public boolean hasPixelFormat(String pixelFormat) {
+		return pixelFormats.contains(pixelFormat);
+	}
+
+	/**
+	 * Checks that the encoder, the output pixel format and (optionally) the filter needed to create a video are supported.
+	 *
+	 * @return the list of problems, empty if the video can be created
+	 */
+	public List<String> validate(String encoder, String pixelFormat, String filter) {
+		List<String> problems = new ArrayList<>();
+
+		if (!isAvailable()) {
+			problems.add("ffmpeg not found or not executable.");
+			return problems;
+		}
+
+		if (!hasEncoder(encoder)) {
+			problems.add("ffmpeg does not support the encoder '" + encoder + "'.");
+		}
+		if (!hasPixelFormat(pixelFormat)) {
+			problems.add("ffmpeg does not support the pixel format '" + pixelFormat + "'.");
+		}
+		if (filter != null && !hasFilter(filter)) {
+			problems.add("ffmpeg does not support the filter '" + filter + "'.");
+		}
+
+		return problems;
+	}
+
+	@Override
+	public String toString() {
+		if (!isAvailable()) {
+			return "ffmpeg not found.";
+		}
+		return "ffmpeg " + version + " (" + encoders.size() + " encoders, " + filters.size() + " filters, " + pixelFormats.size() + " pixel formats)";
+	}
+
+	public static FfmpegCapabilities unavailable() {
+		return new FfmpegCapabilities(null, Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+	}
+
+	public static String parseVersion(String output) {
+		for (String line : output.split("\n")) {
+			String[] tokens = line.trim().split("\\s+");
+			if (tokens.length >= 3 && tokens[0].equals("ffmpeg") && tokens[1].equals("version")) {
+				return tokens[2];
+			}
+		}
+		return null;
+	}
+
+	public static Set<String> parseEncoders(String output) {
+		// " V..... mpeg4                MPEG-4 part 2"
+		return parseTable(output, 1, "------");
+	}
+
+	public static Set<String> parseFilters(String output) {
+		// " TSC framerate         V->V       Upsamples or downsamples progressive source between specified frame rates."
+		Set<String> result = new TreeSet<>();
+		for (String line : output.split("\n")) {
+			String[] tokens = line.trim().split("\\s+");
+			if (tokens.length >= 3 && tokens[2].contains("->")) {
+				result.add(tokens[1]);
+			}
+		}
+		return result;
+	}
+
+	public static Set<String> parsePixelFormats(String output) {
+		// "IO... yuv420p                3            12      8-8-8"
+		return parseTable(output, 1, "-----");
+	}
+
+	private static Set<String> parseTable(String output, int column, String headerSeparator) {
+		Set<String> result = new TreeSet<>();
+		boolean header = true;
+		for (String line : output.split("\n")) {
+			String trimmed = line.trim();
+			if (header) {
+				header = !trimmed.startsWith(headerSeparator);
+				continue;
+			}
+			String[] tokens = trimmed.split("\\s+");
+			if (tokens.length > column) {
+				result.add(tokens[column]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Loads the capabilities from a cache file written by {@link #save(Path, Path, long)}.
+	 *
+	 * @return the cached capabilities or <code>null</code> if the cache does not exist, is incomplete or belongs to another binary or modification time
+	 */
+	public static FfmpegCapabilities load(Path cacheFile, Path binary, long modified) {
+		if (!Files.isReadable(cacheFile)) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			return null;
+		}
+
+		if (!binary.toString().equals(properties.getProperty(KEY_BINARY)) || !String.valueOf(modified).equals(properties.getProperty(KEY_MODIFIED))) {
+			return null;
+		}
+
+		FfmpegCapabilities capabilities = new FfmpegCapabilities(
+				properties.getProperty(KEY_VERSION),
+				toSet(properties.getProperty(KEY_ENCODERS)),
+				toSet(properties.getProperty(KEY_FILTERS)),
+				toSet(properties.getProperty(KEY_PIXEL_FORMATS)));
+		return capabilities.isComplete() ? capabilities : null;
+	}
+
+	public void save(Path cacheFile, Path binary, long modified) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_BINARY, binary.toString());
+		properties.setProperty(KEY_MODIFIED, String.valueOf(modified));
+		properties.setProperty(KEY_VERSION, version);
+		properties.setProperty(KEY_ENCODERS, String.join(",", encoders));
+		properties.setProperty(KEY_FILTERS, String.join(",", filters));
+		properties.setProperty(KEY_PIXEL_FORMATS, String.join(",", pixelFormats));
+
+		Files.createDirectories(cacheFile.getParent());
+		try (Writer writer = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8)) {
+			properties.store(writer, "ffmpeg capabilities");
+		}
+	}
+
+	private static Set<String> toSet(String string) {
+		if (string == null || string.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return new TreeSet<>(Arrays.asList(string.split(",")));
+	}
+}
@@ -0,0 +1,152 @@
+package ch.obermuhlner.timelapse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import ch.obermuhlner.timelapse.CommandExecutor.CommandExecutorListener;
+
+/**
+ * Probes the capabilities of an ffmpeg binary.
+ *
+ * The probe commands are run in parallel and the parsed result is cached on disk,
+ * keyed by the resolved binary path and its modification time.
+ */
+public class FfmpegProbe {
+
+	public static final String DEFAULT_FFMPEG = System.getProperty("timelapse.ffmpeg", "ffmpeg");
+
+	private static final Path DEFAULT_CACHE_FILE = Paths.get(System.getProperty("user.home"), ".ez-timelapse", "ffmpeg-capabilities.properties");
+
+	private final String ffmpeg;
+	private final Path cacheFile;
+
+	public FfmpegProbe(String ffmpeg) {
+		this(ffmpeg, DEFAULT_CACHE_FILE);
+	}
+
+	public FfmpegProbe(String ffmpeg, Path cacheFile) {
+		this.ffmpeg = ffmpeg;
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Returns the capabilities of the ffmpeg binary, either from the cache or by running the probe commands.
+	 *
+	 * Blocks until the probe commands are finished - do not call from the FX application thread.
+	 */
+	public FfmpegCapabilities probe() {
+		Path binary = resolveBinary(ffmpeg);
+		if (binary == null) {
+			return FfmpegCapabilities.unavailable();
+		}
+
+		long modified;
+		try {
+			modified = Files.getLastModifiedTime(binary).toMillis();
+		} catch (IOException e) {
+			return FfmpegCapabilities.unavailable();
+		}
+
+		FfmpegCapabilities capabilities = FfmpegCapabilities.load(cacheFile, binary, modified);
+		if (capabilities != null) {
+			return capabilities;
+		}
+
+		capabilities = runProbe(binary.toString());
+		if (capabilities.isComplete()) {
+			try {
+				capabilities.save(cacheFile, binary, modified);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return capabilities;
+	}
+
+	private FfmpegCapabilities runProbe(String binary) {
+		StringBuilder version = new StringBuilder();
+		StringBuilder encoders = new StringBuilder();
+		StringBuilder filters = new StringBuilder();
+		StringBuilder pixelFormats = new StringBuilder();
+
+		CountDownLatch latch = new CountDownLatch(4);
+		runAsync(binary, "-version", version, latch);
+		runAsync(binary, "-encoders", encoders, latch);
+		runAsync(binary, "-filters", filters, latch);
+		runAsync(binary, "-pix_fmts", pixelFormats, latch);
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return FfmpegCapabilities.unavailable();
+		}
+
+		synchronized (this) {
+			return new FfmpegCapabilities(
+					FfmpegCapabilities.parseVersion(version.toString()),
+					FfmpegCapabilities.parseEncoders(encoders.toString()),
+					FfmpegCapabilities.parseFilters(filters.toString()),
+					FfmpegCapabilities.parsePixelFormats(pixelFormats.toString()));
+		}
+	}
+
+	private void runAsync(String binary, String option, StringBuilder output, CountDownLatch latch) {
+		CommandExecutor commandExecutor = new CommandExecutor(Arrays.asList(binary, "-hide_banner", option), null, new CommandExecutorListener() {
+			@Override
+			public void addOutput(String line) {
+				synchronized (FfmpegProbe.this) {
+					output.append(line);
+				}
+			}
+
+			@Override
+			public void addError(String error) {
+				// ignore
+			}
+
+			@Override
+			public void finished() {
+				latch.countDown();
+			}
+		});
+
+		commandExecutor.runAsync();
+	}
+
+	/**
+	 * Resolves the ffmpeg binary either as an explicit path or by searching the PATH environment variable.
+	 *
+	 * @return the resolved binary or <code>null</code> if not found
+	 */
+	public static Path resolveBinary(String ffmpeg) {
+		if (ffmpeg == null || ffmpeg.isEmpty()) {
+			return null;
+		}
+
+		if (ffmpeg.contains("/") || ffmpeg.contains(File.separator)) {
+			Path path = Paths.get(ffmpeg).toAbsolutePath();
+			return Files.isExecutable(path) ? path : null;
+		}
+
+		String pathEnvironment = System.getenv("PATH");
+		if (pathEnvironment == null) {
+			return null;
+		}
+
+		for (String directory : pathEnvironment.split(File.pathSeparator)) {
+			for (String name : Arrays.asList(ffmpeg, ffmpeg + ".exe")) {
+				Path path = Paths.get(directory, name);
+				if (Files.isRegularFile(path) && Files.isExecutable(path)) {
+					return path.toAbsolutePath();
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,150 @@
+package ch.obermuhlner.timelapse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The result of scanning a directory for a numbered sequence of images.
+ */
+public class ImageDirectory {
+
+	private final String filePattern;
+	private final int firstNumber;
+	private final int imageCount;
+	private final String message;
+
+	private ImageDirectory(String filePattern, int firstNumber, int imageCount, String message) {
+		this.filePattern = filePattern;
+		this.firstNumber = firstNumber;
+		this.imageCount = imageCount;
+		this.message = message;
+	}
+
+	public boolean isValid() {
+		return filePattern != null;
+	}
+
+	public String getFilePattern() {
+		return filePattern;
+	}
+
+	public int getFirstNumber() {
+		return firstNumber;
+	}
+
+	public int getImageCount() {
+		return imageCount;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Scans the directory for the largest group of images sharing the same {@link ImageFilenameParser#getFilePattern() file pattern}.
+	 */
+	public static ImageDirectory scan(String directory) {
+		if (directory == null) {
+			return new ImageDirectory(null, 0, 0, null);
+		}
+
+		Path directoryPath = Paths.get(directory);
+		try (Stream<Path> paths = Files.list(directoryPath)) {
+			Optional<Entry<String, List<ImageFilenameParser>>> optionalParsers = paths
+				.filter(Files::isReadable)
+				.filter(path -> isImageFile(path))
+				.map(path -> new ImageFilenameParser(path.getFileName().toString()))
+				.filter(parser -> parser.isValid())
+				.collect(Collectors.groupingBy(parser -> parser.getFilePattern()))
+				.entrySet().stream()
+				.sorted((entry1, entry2) -> -Integer.compare(entry1.getValue().size(), entry2.getValue().size()))
+				.findFirst();
+
+			if (optionalParsers.isPresent()) {
+				List<ImageFilenameParser> parsers = optionalParsers.get().getValue();
+
+				ImageFilenameParser firstParser = parsers.get(0);
+
+				List<Integer> sortedNumbers = parsers.stream()
+						.map(parser -> parser.getNumber())
+						.sorted()
+						.collect(Collectors.toList());
+
+				int firstNumber = sortedNumbers.get(0);
+				int lastNumber = findLastConsecutiveNumber(sortedNumbers);
+				int countNumbers = lastNumber - firstNumber;
+
+				return new ImageDirectory(firstParser.getFilePattern(), firstNumber, countNumbers, countNumbers + " images found in directory, starting at number " + firstNumber + ".");
+			} else {
+				return new ImageDirectory(null, 0, 0, "No images found in directory.");
+			}
+		} catch (NotDirectoryException e) {
+			return new ImageDirectory(null, 0, 0, "Not a directory.");
+		} catch (NoSuchFileException e) {
+			return new ImageDirectory(null, 0, 0, "Directory not found.");
+		} catch (IOException e) {
+			return new ImageDirectory(null, 0, 0, "Directory could not be read.");
+		}
+	}
+
+	/**
+	 * Counts the consecutive images matching the pattern and start number of the settings, the same way ffmpeg reads them.
+	 */
+	public static int countImages(RenderSettings settings) {
+		String directory = settings.imageDirectoryProperty().get();
+		String pattern = settings.imagePatternProperty().get();
+		if (directory == null || pattern == null) {
+			return 0;
+		}
+
+		try {
+			int number = settings.imageStartNumberProperty().get();
+			if (String.format(pattern, number).equals(String.format(pattern, number + 1))) {
+				// pattern without number
+				return Files.isRegularFile(Paths.get(directory, pattern)) ? 1 : 0;
+			}
+
+			int count = 0;
+			while (Files.isRegularFile(Paths.get(directory, String.format(pattern, number + count)))) {
+				count++;
+			}
+			return count;
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
+	}
+
+	private static int findLastConsecutiveNumber(List<Integer> sortedNumbers) {
+		int number = sortedNumbers.get(0);
+
+		for (int sortedNumber : sortedNumbers) {
+			if (sortedNumber == number) {
+				number++;
+			} else if (sortedNumber > number) {
+				break;
+			}
+		}
+
+		return number;
+	}
+
+	public static boolean isImageFile(Path path) {
+		String string = path.getFileName().toString();
+		for (String extension : Arrays.asList(".jpg", ".JPG", ".jpeg", ".png", ".PNG")) {
+			if (string.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
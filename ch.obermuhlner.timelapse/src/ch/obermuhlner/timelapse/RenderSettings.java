@@ -0,0 +1,313 @@
+package ch.obermuhlner.timelapse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javafx.beans.Observable;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * The settings needed to render a timelapse video from a directory of images.
+ *
+ * The properties are not thread-safe - use {@link #copy()} to hand a snapshot to a background thread.
+ */
+public class RenderSettings {
+
+	public static final String VIDEO_CODEC = "mpeg4";
+	public static final String PIXEL_FORMAT = "yuv420p";
+	public static final String INTERPOLATION_FILTER = "framerate";
+
+	/**
+	 * Fraction of the target size reserved for the container overhead.
+	 */
+	private static final double CONTAINER_OVERHEAD = 0.02;
+
+	public enum RateControl {
+		QUALITY("Quality"),
+		TARGET_SIZE("Target Size"),
+		TARGET_BITRATE("Target Bitrate");
+
+		private final String label;
+
+		private RateControl(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	private final StringProperty ffmpegProperty = new SimpleStringProperty(FfmpegProbe.DEFAULT_FFMPEG);
+
+	private final StringProperty imageDirectoryProperty = new SimpleStringProperty();
+	private final BooleanProperty imageAutoFillProperty = new SimpleBooleanProperty(true);
+	private final StringProperty imagePatternProperty = new SimpleStringProperty();
+	private final IntegerProperty imageStartNumberProperty = new SimpleIntegerProperty();
+	private final IntegerProperty imagesFrameRateProperty = new SimpleIntegerProperty(1);
+
+	private final BooleanProperty useInterpolatedFilterProperty = new SimpleBooleanProperty(true);
+	private final IntegerProperty interpolatedFrameRateProperty = new SimpleIntegerProperty(30);
+	private final IntegerProperty interpolatedStartProperty = new SimpleIntegerProperty(0);
+	private final IntegerProperty interpolatedEndProperty = new SimpleIntegerProperty(255);
+
+	private final StringProperty videoFileNameProperty = new SimpleStringProperty("output.mp4");
+	private final IntegerProperty videoResolutionWidthProperty = new SimpleIntegerProperty(1920);
+	private final IntegerProperty videoResolutionHeightProperty = new SimpleIntegerProperty(1080);
+	private final IntegerProperty videoQualityProperty = new SimpleIntegerProperty(1);
+	private final ObjectProperty<RateControl> videoRateControlProperty = new SimpleObjectProperty<>(RateControl.QUALITY);
+	private final IntegerProperty videoTargetSizeProperty = new SimpleIntegerProperty(100);
+	private final IntegerProperty videoTargetBitrateProperty = new SimpleIntegerProperty(8000);
+
+	public StringProperty ffmpegProperty() {
+		return ffmpegProperty;
+	}
+
+	public StringProperty imageDirectoryProperty() {
+		return imageDirectoryProperty;
+	}
+
+	public BooleanProperty imageAutoFillProperty() {
+		return imageAutoFillProperty;
+	}
+
+	public StringProperty imagePatternProperty() {
+		return imagePatternProperty;
+	}
+
+	public IntegerProperty imageStartNumberProperty() {
+		return imageStartNumberProperty;
+	}
+
+	public IntegerProperty imagesFrameRateProperty() {
+		return imagesFrameRateProperty;
+	}
+
+	public BooleanProperty useInterpolatedFilterProperty() {
+		return useInterpolatedFilterProperty;
+	}
+
+	public IntegerProperty interpolatedFrameRateProperty() {
+		return interpolatedFrameRateProperty;
+	}
+
+	public IntegerProperty interpolatedStartProperty() {
+		return interpolatedStartProperty;
+	}
+
+	public IntegerProperty interpolatedEndProperty() {
+		return interpolatedEndProperty;
+	}
+
+	public StringProperty videoFileNameProperty() {
+		return videoFileNameProperty;
+	}
+
+	public IntegerProperty videoResolutionWidthProperty() {
+		return videoResolutionWidthProperty;
+	}
+
+	public IntegerProperty videoResolutionHeightProperty() {
+		return videoResolutionHeightProperty;
+	}
+
+	public IntegerProperty videoQualityProperty() {
+		return videoQualityProperty;
+	}
+
+	public ObjectProperty<RateControl> videoRateControlProperty() {
+		return videoRateControlProperty;
+	}
+
+	/**
+	 * The target size of the video in megabytes (1000 * 1000 bytes), used with {@link RateControl#TARGET_SIZE}.
+	 */
+	public IntegerProperty videoTargetSizeProperty() {
+		return videoTargetSizeProperty;
+	}
+
+	/**
+	 * The target bitrate of the video in kbit/s, used with {@link RateControl#TARGET_BITRATE}.
+	 */
+	public IntegerProperty videoTargetBitrateProperty() {
+		return videoTargetBitrateProperty;
+	}
+
+	/**
+	 * Returns all properties that influence the rendered video.
+	 */
+	public Observable[] getObservables() {
+		return new Observable[] {
+				ffmpegProperty,
+				imageDirectoryProperty,
+				imageAutoFillProperty,
+				imagePatternProperty,
+				imageStartNumberProperty,
+				imagesFrameRateProperty,
+				useInterpolatedFilterProperty,
+				interpolatedFrameRateProperty,
+				interpolatedStartProperty,
+				interpolatedEndProperty,
+				videoFileNameProperty,
+				videoResolutionWidthProperty,
+				videoResolutionHeightProperty,
+				videoQualityProperty,
+				videoRateControlProperty,
+				videoTargetSizeProperty,
+				videoTargetBitrateProperty
+		};
+	}
+
+	public RenderSettings copy() {
+		RenderSettings copy = new RenderSettings();
+		copy.ffmpegProperty.set(ffmpegProperty.get());
+		copy.imageDirectoryProperty.set(imageDirectoryProperty.get());
+		copy.imageAutoFillProperty.set(imageAutoFillProperty.get());
+		copy.imagePatternProperty.set(imagePatternProperty.get());
+		copy.imageStartNumberProperty.set(imageStartNumberProperty.get());
+		copy.imagesFrameRateProperty.set(imagesFrameRateProperty.get());
+		copy.useInterpolatedFilterProperty.set(useInterpolatedFilterProperty.get());
+		copy.interpolatedFrameRateProperty.set(interpolatedFrameRateProperty.get());
+		copy.interpolatedStartProperty.set(interpolatedStartProperty.get());
+		copy.interpolatedEndProperty.set(interpolatedEndProperty.get());
+		copy.videoFileNameProperty.set(videoFileNameProperty.get());
+		copy.videoResolutionWidthProperty.set(videoResolutionWidthProperty.get());
+		copy.videoResolutionHeightProperty.set(videoResolutionHeightProperty.get());
+		copy.videoQualityProperty.set(videoQualityProperty.get());
+		copy.videoRateControlProperty.set(videoRateControlProperty.get());
+		copy.videoTargetSizeProperty.set(videoTargetSizeProperty.get());
+		copy.videoTargetBitrateProperty.set(videoTargetBitrateProperty.get());
+		return copy;
+	}
+
+	/**
+	 * Loads the settings from properties, using the property names without the <code>Property</code> suffix as keys.
+	 *
+	 * Settings without a matching key keep their current value.
+	 */
+	public void load(Properties properties) {
+		ffmpegProperty.set(properties.getProperty("ffmpeg", ffmpegProperty.get()));
+		imageAutoFillProperty.set(Boolean.parseBoolean(properties.getProperty("imageAutoFill", String.valueOf(imageAutoFillProperty.get()))));
+		imagesFrameRateProperty.set(Integer.parseInt(properties.getProperty("imagesFrameRate", String.valueOf(imagesFrameRateProperty.get()))));
+		useInterpolatedFilterProperty.set(Boolean.parseBoolean(properties.getProperty("useInterpolatedFilter", String.valueOf(useInterpolatedFilterProperty.get()))));
+		interpolatedFrameRateProperty.set(Integer.parseInt(properties.getProperty("interpolatedFrameRate", String.valueOf(interpolatedFrameRateProperty.get()))));
+		interpolatedStartProperty.set(Integer.parseInt(properties.getProperty("interpolatedStart", String.valueOf(interpolatedStartProperty.get()))));
+		interpolatedEndProperty.set(Integer.parseInt(properties.getProperty("interpolatedEnd", String.valueOf(interpolatedEndProperty.get()))));
+		videoFileNameProperty.set(properties.getProperty("videoFileName", videoFileNameProperty.get()));
+		videoResolutionWidthProperty.set(Integer.parseInt(properties.getProperty("videoResolutionWidth", String.valueOf(videoResolutionWidthProperty.get()))));
+		videoResolutionHeightProperty.set(Integer.parseInt(properties.getProperty("videoResolutionHeight", String.valueOf(videoResolutionHeightProperty.get()))));
+		videoQualityProperty.set(Integer.parseInt(properties.getProperty("videoQuality", String.valueOf(videoQualityProperty.get()))));
+		videoRateControlProperty.set(RateControl.valueOf(properties.getProperty("videoRateControl", videoRateControlProperty.get().name())));
+		videoTargetSizeProperty.set(Integer.parseInt(properties.getProperty("videoTargetSize", String.valueOf(videoTargetSizeProperty.get()))));
+		videoTargetBitrateProperty.set(Integer.parseInt(properties.getProperty("videoTargetBitrate", String.valueOf(videoTargetBitrateProperty.get()))));
+	}
+
+	/**
+	 * Checks the settings against the capabilities of ffmpeg.
+	 *
+	 * @return the list of problems, empty if the video can be created
+	 */
+	public List<String> validate(FfmpegCapabilities capabilities) {
+		return capabilities.validate(VIDEO_CODEC, PIXEL_FORMAT, useInterpolatedFilterProperty.get() ? INTERPOLATION_FILTER : null);
+	}
+
+	public boolean isTwoPass() {
+		return videoRateControlProperty.get() != RateControl.QUALITY;
+	}
+
+	public int getOutputFrameRate() {
+		return useInterpolatedFilterProperty.get() ? interpolatedFrameRateProperty.get() : imagesFrameRateProperty.get();
+	}
+
+	/**
+	 * Returns the number of frames in the video created from the specified number of images.
+	 */
+	public long getOutputFrameCount(int imageCount) {
+		return (long) Math.ceil(getDurationSeconds(imageCount) * getOutputFrameRate());
+	}
+
+	public double getDurationSeconds(int imageCount) {
+		return (double) imageCount / imagesFrameRateProperty.get();
+	}
+
+	/**
+	 * Returns the video bitrate in kbit/s for the two pass rate controls.
+	 */
+	public int getBitrate(int imageCount) {
+		if (videoRateControlProperty.get() == RateControl.TARGET_BITRATE) {
+			return videoTargetBitrateProperty.get();
+		}
+
+		if (imageCount <= 0) {
+			return 0;
+		}
+
+		double durationSeconds = getOutputFrameCount(imageCount) / (double) getOutputFrameRate();
+		double kilobits = videoTargetSizeProperty.get() * 8000.0 * (1.0 - CONTAINER_OVERHEAD);
+		return (int) Math.max(1, kilobits / durationSeconds);
+	}
+
+	/**
+	 * Creates the ffmpeg commands to render the video - one command for {@link RateControl#QUALITY}, two commands (one per pass) otherwise.
+	 *
+	 * The commands must be executed in the image directory.
+	 *
+	 * @param imageCount the number of images, used to calculate the bitrate for {@link RateControl#TARGET_SIZE}
+	 * @param passLogFile the prefix of the pass log files, used by the two pass rate controls
+	 */
+	public List<List<String>> createCommands(int imageCount, Path passLogFile) {
+		if (!isTwoPass()) {
+			List<String> command = createInputCommand();
+			command.add("-q:v");
+			command.add(String.valueOf(videoQualityProperty.get()));
+			command.add(videoFileNameProperty.get());
+			return Arrays.asList(command);
+		}
+
+		String bitrate = getBitrate(imageCount) + "k";
+
+		// the first pass only analyzes - skip audio and discard the output with the null muxer
+		List<String> firstPass = createInputCommand();
+		firstPass.addAll(Arrays.asList("-b:v", bitrate, "-pass", "1", "-passlogfile", passLogFile.toString(), "-an", "-f", "null", "-"));
+
+		List<String> secondPass = createInputCommand();
+		secondPass.addAll(Arrays.asList("-b:v", bitrate, "-pass", "2", "-passlogfile", passLogFile.toString()));
+		secondPass.add(videoFileNameProperty.get());
+
+		return Arrays.asList(firstPass, secondPass);
+	}
+
+	private List<String> createInputCommand() {
+		List<String> command = new ArrayList<>();
+		command.add(ffmpegProperty.get());
+		command.add("-y");
+		command.add("-r");
+		command.add(String.valueOf(imagesFrameRateProperty.get()));
+		command.add("-start_number");
+		command.add(String.valueOf(imageStartNumberProperty.get()));
+		command.add("-i");
+		command.add(imagePatternProperty.get());
+		command.add("-s");
+		command.add(videoResolutionWidthProperty.get() + "x" + videoResolutionHeightProperty.get());
+		if (useInterpolatedFilterProperty.get()) {
+			command.add("-vf");
+			command.add(INTERPOLATION_FILTER + "=fps=" + interpolatedFrameRateProperty.get() + ":interp_start=" + interpolatedStartProperty.get() + ":interp_end=" + interpolatedEndProperty.get() + ":scene=100");
+		}
+		command.add("-vcodec");
+		command.add(VIDEO_CODEC);
+		command.add("-pix_fmt");
+		command.add(PIXEL_FORMAT);
+		return command;
+	}
+}
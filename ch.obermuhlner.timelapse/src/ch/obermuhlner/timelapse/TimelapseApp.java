@@ -2,34 +2,29 @@ package ch.obermuhlner.timelapse;
 
 import java.awt.Desktop;
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.Format;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import ch.obermuhlner.timelapse.CommandExecutor.CommandExecutorListener;
+import ch.obermuhlner.timelapse.RenderSettings.RateControl;
+import ch.obermuhlner.timelapse.VideoRenderer.RenderListener;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.Observable;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.Property;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -42,6 +37,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
@@ -68,30 +64,32 @@ public class TimelapseApp extends Application {
 	
 	private static final Pattern RESOLUTION_PATTERN = Pattern.compile("([0-9]+)x([0-9]+)");
 
-	private StringProperty imageDirectoryProperty = new SimpleStringProperty();
-	private BooleanProperty imageAutoFillProperty = new SimpleBooleanProperty(true);
-	private StringProperty imagePatternProperty = new SimpleStringProperty();
-	private IntegerProperty imageStartNumberProperty = new SimpleIntegerProperty();
-	private StringProperty videoFileNameProperty = new SimpleStringProperty("output.mp4");
-	private IntegerProperty imagesFrameRateProperty = new SimpleIntegerProperty(1);
-	private ObjectProperty<Image> imageProperty = new SimpleObjectProperty<>();
+	private static final long DEBOUNCE_MILLIS = 300;
 
-	private BooleanProperty useInterpolatedFilterProperty = new SimpleBooleanProperty(true);
-	private IntegerProperty interpolatedFrameRateProperty = new SimpleIntegerProperty(30);
-	private IntegerProperty interpolatedStartProperty = new SimpleIntegerProperty(0);
-	private IntegerProperty interpolatedEndProperty = new SimpleIntegerProperty(255);
-	
+	private static final int PREVIEW_SIZE = 512;
+
+	private final RenderSettings settings = new RenderSettings();
+
+	private ObjectProperty<Image> imageProperty = new SimpleObjectProperty<>();
 	private StringProperty videoResolutionProperty = new SimpleStringProperty();
-	private IntegerProperty videoResolutionWidthProperty = new SimpleIntegerProperty(1920);
-	private IntegerProperty videoResolutionHeightProperty = new SimpleIntegerProperty(1080);
-	private IntegerProperty videoQualityProperty = new SimpleIntegerProperty(1);
 
 	private StringProperty inputValidationMessage = new SimpleStringProperty();
 	
 	private StringProperty commandProperty = new SimpleStringProperty();
+	private ObjectProperty<FfmpegCapabilities> ffmpegCapabilitiesProperty = new SimpleObjectProperty<>();
+	private StringProperty ffmpegInfoProperty = new SimpleStringProperty("Probing ffmpeg...");
+	private DoubleProperty progressProperty = new SimpleDoubleProperty(0);
+	private StringProperty progressMessageProperty = new SimpleStringProperty();
 	private TextArea commandOutputTextArea;
 
 	private Stage primaryStage;
+
+	private final DebouncedScheduler ffmpegProbeScheduler = new DebouncedScheduler(DEBOUNCE_MILLIS, Platform::runLater);
+	private final DebouncedScheduler updateScheduler = new DebouncedScheduler(DEBOUNCE_MILLIS, Platform::runLater);
+	private boolean scanPending = true;
+	private ImageDirectory lastImageDirectory;
+	private boolean applyingUpdate;
+	private String ffmpegProbeError;
 	
 	@Override
 	public void start(Stage primaryStage) throws Exception {
@@ -107,6 +105,48 @@ public class TimelapseApp extends Application {
                 
 		primaryStage.setScene(scene);
         primaryStage.show();
+
+        settings.imageDirectoryProperty().addListener(changeEvent -> {
+        	scanPending = true;
+        });
+        settings.imageAutoFillProperty().addListener(changeEvent -> {
+        	scanPending = true;
+        });
+        for (Observable observable : settings.getObservables()) {
+        	observable.addListener(changeEvent -> {
+        		scheduleUpdate();
+        	});
+        }
+        ffmpegCapabilitiesProperty.addListener(changeEvent -> {
+        	scheduleUpdate();
+        });
+        settings.ffmpegProperty().addListener(changeEvent -> {
+        	updateFfmpegCapabilities();
+        });
+
+        updateFfmpegCapabilities();
+        scheduleUpdate();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		ffmpegProbeScheduler.shutdown();
+		updateScheduler.shutdown();
+	}
+
+	private void updateFfmpegCapabilities() {
+		String ffmpeg = settings.ffmpegProperty().get();
+
+		ffmpegProbeError = null;
+		ffmpegCapabilitiesProperty.set(null);
+
+		ffmpegProbeScheduler.schedule(
+				() -> new FfmpegProbe(ffmpeg).probe(),
+				capabilities -> ffmpegCapabilitiesProperty.set(capabilities),
+				exception -> {
+					ffmpegProbeError = "Probing ffmpeg failed: " + exception;
+					ffmpegInfoProperty.set(ffmpegProbeError);
+				});
 	}
 
 	private Node createEditor() {
@@ -137,7 +177,7 @@ public class TimelapseApp extends Application {
         
         int rowIndex = 0;
 		
-        TextField directoryChooserTextField = addDirectoryChooser(gridPane, rowIndex++, "Image Directory", imageDirectoryProperty);
+        TextField directoryChooserTextField = addDirectoryChooser(gridPane, rowIndex++, "Image Directory", settings.imageDirectoryProperty());
         directoryChooserTextField.setTooltip(new Tooltip("Select the directory containing your images to convert into a video."));
         directoryChooserTextField.setPromptText("Enter or drag directory here");
 		directoryChooserTextField.setOnDragOver(event -> {
@@ -153,49 +193,35 @@ public class TimelapseApp extends Application {
 				firstFile = firstFile.getParentFile();
 			}
 			if (firstFile != null) {
-				imageDirectoryProperty.set(firstFile.toPath().toString());
+				settings.imageDirectoryProperty().set(firstFile.toPath().toString());
 				event.setDropCompleted(true);
 			}
 			event.consume();
 		});
         
-		addCheckBox(gridPane, rowIndex++, "Auto Pattern From Directory", imageAutoFillProperty)
+		addCheckBox(gridPane, rowIndex++, "Auto Pattern From Directory", settings.imageAutoFillProperty())
 				.setTooltip(new Tooltip("Enable automatic pattern and start number from directory."));
         
-		TextField imagePatternTextField = addTextField(gridPane, rowIndex++, "Image Pattern", imagePatternProperty);
+		TextField imagePatternTextField = addTextField(gridPane, rowIndex++, "Image Pattern", settings.imagePatternProperty());
         imagePatternTextField.setTooltip(new Tooltip("The common pattern of the images.\n\nWill be filled automatically from the first image file in the directory."));
-        imagePatternTextField.disableProperty().bind(imageAutoFillProperty);
+        imagePatternTextField.disableProperty().bind(settings.imageAutoFillProperty());
         
-        TextField startNumberTextField = addTextField(gridPane, rowIndex++, "Image Start Number", imageStartNumberProperty, INTEGER_FORMAT);
+        TextField startNumberTextField = addTextField(gridPane, rowIndex++, "Image Start Number", settings.imageStartNumberProperty(), INTEGER_FORMAT);
         startNumberTextField.setTooltip(new Tooltip("The number of the first image to be used in the video.\n\nWill be filled automatically from the first image file in the directory."));
-        startNumberTextField.disableProperty().bind(imageAutoFillProperty);
+        startNumberTextField.disableProperty().bind(settings.imageAutoFillProperty());
         
         TextArea infoTextArea = addTextArea(gridPane, rowIndex++, "Input Info", inputValidationMessage, 1);
         infoTextArea.setEditable(false);
 		infoTextArea.setTooltip(new Tooltip("Information about the specified image directory."));
 
-        addTextField(gridPane, rowIndex++, "Image Frame Rate", imagesFrameRateProperty, INTEGER_FORMAT)
+        addTextField(gridPane, rowIndex++, "Image Frame Rate", settings.imagesFrameRateProperty(), INTEGER_FORMAT)
         		.setTooltip(new Tooltip("Frame rate (in frames per second) at which the images are shown in the video."));
         
         ImageView imageView = addImageView(gridPane, rowIndex++, "Image", imageProperty);
-        imageView.setFitWidth(512);
-        imageView.setFitHeight(512);
+        imageView.setFitWidth(PREVIEW_SIZE);
+        imageView.setFitHeight(PREVIEW_SIZE);
         imageView.setPreserveRatio(true);
 
-        imageAutoFillProperty.addListener(changeEvent -> {
-       		updateImageDirectory();
-        });
-        imageDirectoryProperty.addListener(changeEvent -> {
-        	updateImageDirectory();
-        	updateImage();
-        });
-        imagePatternProperty.addListener(changeEvent -> {
-        	updateImage();
-        });
-        imageStartNumberProperty.addListener(changeEvent -> {
-        	updateImage();
-        });
-        
 		return gridPane;
 	}
 
@@ -206,18 +232,18 @@ public class TimelapseApp extends Application {
         
         int rowIndex = 0;
 
-        addCheckBox(gridPane, rowIndex++, "Interpolate between frames", useInterpolatedFilterProperty)
+        addCheckBox(gridPane, rowIndex++, "Interpolate between frames", settings.useInterpolatedFilterProperty())
         	.setTooltip(new Tooltip("Check to make a smooth transition between the images."));
         
-        TextField rateTextField = addTextField(gridPane, rowIndex++, "Interpolated Frame Rate", interpolatedFrameRateProperty, INTEGER_FORMAT);
-        rateTextField.disableProperty().bind(useInterpolatedFilterProperty.not());
+        TextField rateTextField = addTextField(gridPane, rowIndex++, "Interpolated Frame Rate", settings.interpolatedFrameRateProperty(), INTEGER_FORMAT);
+        rateTextField.disableProperty().bind(settings.useInterpolatedFilterProperty().not());
     	rateTextField.setTooltip(new Tooltip("Frame rate (in frames per second) after the interpolation between images.\n\nMaximum useful value is 30."));
 
-        TextField startTextField = addTextField(gridPane, rowIndex++, "Interpolation Start", interpolatedStartProperty, INTEGER_FORMAT);
-        startTextField.disableProperty().bind(useInterpolatedFilterProperty.not());
+        TextField startTextField = addTextField(gridPane, rowIndex++, "Interpolation Start", settings.interpolatedStartProperty(), INTEGER_FORMAT);
+        startTextField.disableProperty().bind(settings.useInterpolatedFilterProperty().not());
 
-        TextField endTextField = addTextField(gridPane, rowIndex++, "Interpolation End", interpolatedEndProperty, INTEGER_FORMAT);
-        endTextField.disableProperty().bind(useInterpolatedFilterProperty.not());
+        TextField endTextField = addTextField(gridPane, rowIndex++, "Interpolation End", settings.interpolatedEndProperty(), INTEGER_FORMAT);
+        endTextField.disableProperty().bind(settings.useInterpolatedFilterProperty().not());
 
         return gridPane;
 	}
@@ -229,7 +255,7 @@ public class TimelapseApp extends Application {
         
         int rowIndex = 0;
 
-        addTextField(gridPane, rowIndex++, "Output Video File", videoFileNameProperty)
+        addTextField(gridPane, rowIndex++, "Output Video File", settings.videoFileNameProperty())
         	.setTooltip(new Tooltip("The name of the video file to create."));
         addComboBox(gridPane, rowIndex++, "Video Resolution", videoResolutionProperty, 
         		"Full HD (1920x1080)",
@@ -241,13 +267,25 @@ public class TimelapseApp extends Application {
         		"SVGA (800x600)", 
         		"VGA (640x480)", 
         		"Custom");
-        TextField widthTextField = addTextField(gridPane, rowIndex++, "Video Width", videoResolutionWidthProperty, INTEGER_FORMAT);
+        TextField widthTextField = addTextField(gridPane, rowIndex++, "Video Width", settings.videoResolutionWidthProperty(), INTEGER_FORMAT);
         widthTextField.setTooltip(new Tooltip("Width in pixels of the created video."));
-        TextField heightTextField = addTextField(gridPane, rowIndex++, "Video Height", videoResolutionHeightProperty, INTEGER_FORMAT);
+        TextField heightTextField = addTextField(gridPane, rowIndex++, "Video Height", settings.videoResolutionHeightProperty(), INTEGER_FORMAT);
         heightTextField.setTooltip(new Tooltip("Height in pixels of the created video."));
 
-        addTextField(gridPane, rowIndex++, "Video Quality", videoQualityProperty, INTEGER_FORMAT)
-        	.setTooltip(new Tooltip("Quality of the created video.\n\n1 is high quality."));
+        addComboBox(gridPane, rowIndex++, "Rate Control", settings.videoRateControlProperty(), RateControl.values())
+        	.setTooltip(new Tooltip("How the size of the created video is controlled.\n\nTarget Size and Target Bitrate use two pass encoding."));
+
+        TextField qualityTextField = addTextField(gridPane, rowIndex++, "Video Quality", settings.videoQualityProperty(), INTEGER_FORMAT);
+        qualityTextField.setTooltip(new Tooltip("Quality of the created video.\n\n1 is high quality."));
+        qualityTextField.disableProperty().bind(settings.videoRateControlProperty().isNotEqualTo(RateControl.QUALITY));
+
+        TextField targetSizeTextField = addTextField(gridPane, rowIndex++, "Target Size (MB)", settings.videoTargetSizeProperty(), INTEGER_FORMAT);
+        targetSizeTextField.setTooltip(new Tooltip("Size in megabytes of the created video.\n\nThe bitrate is calculated from the number of images and the frame rate."));
+        targetSizeTextField.disableProperty().bind(settings.videoRateControlProperty().isNotEqualTo(RateControl.TARGET_SIZE));
+
+        TextField targetBitrateTextField = addTextField(gridPane, rowIndex++, "Target Bitrate (kbit/s)", settings.videoTargetBitrateProperty(), INTEGER_FORMAT);
+        targetBitrateTextField.setTooltip(new Tooltip("Bitrate in kbit/s of the created video."));
+        targetBitrateTextField.disableProperty().bind(settings.videoRateControlProperty().isNotEqualTo(RateControl.TARGET_BITRATE));
         
         updateVideoResolution(widthTextField, heightTextField);
         videoResolutionProperty.addListener((observable, oldValue, newValue) -> {
@@ -266,8 +304,8 @@ public class TimelapseApp extends Application {
 		} else {
 			Matcher matcher = RESOLUTION_PATTERN.matcher(resolution);
 			if (matcher.find()) {
-				videoResolutionWidthProperty.set(Integer.parseInt(matcher.group(1)));
-				videoResolutionHeightProperty.set(Integer.parseInt(matcher.group(2)));
+				settings.videoResolutionWidthProperty().set(Integer.parseInt(matcher.group(1)));
+				settings.videoResolutionHeightProperty().set(Integer.parseInt(matcher.group(2)));
 			}
 			
 			widthTextField.setDisable(true);
@@ -282,9 +320,33 @@ public class TimelapseApp extends Application {
         
         int rowIndex = 0;
 
+        addTextField(gridPane, rowIndex++, "FFmpeg Executable", settings.ffmpegProperty())
+        	.setTooltip(new Tooltip("The ffmpeg executable used to create the video.\n\nEither a command found in the PATH or the full path to the executable."));
+
+        TextArea ffmpegInfoTextArea = addTextArea(gridPane, rowIndex++, "FFmpeg Info", ffmpegInfoProperty, 1);
+        ffmpegInfoTextArea.setEditable(false);
+        ffmpegInfoTextArea.setTooltip(new Tooltip("Information about the capabilities of the ffmpeg executable."));
+
+        TextArea commandTextArea = addTextArea(gridPane, rowIndex++, "Command", commandProperty, 2);
+        commandTextArea.setEditable(false);
+        commandTextArea.setWrapText(true);
+        commandTextArea.setTooltip(new Tooltip("The command that will be executed to create the video."));
+
         Button runButton = new Button("Create Video");
         runButton.setTooltip(new Tooltip("Creates the video according to the specified parameters."));
         gridPane.add(runButton, 1, rowIndex++);
+
+        gridPane.add(new Text("Progress"), 0, rowIndex);
+        BorderPane progressBorderPane = new BorderPane();
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.progressProperty().bind(progressProperty);
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        progressBorderPane.setCenter(progressBar);
+        Text progressText = new Text();
+        progressText.textProperty().bind(progressMessageProperty);
+        BorderPane.setMargin(progressText, new Insets(0, 0, 0, GRID_GAP));
+        progressBorderPane.setRight(progressText);
+        gridPane.add(progressBorderPane, 1, rowIndex++);
         
         commandOutputTextArea = addTextArea(gridPane, rowIndex++, "Command Output", null, 1);
         commandOutputTextArea.setTooltip(new Tooltip("Output of the command creating the video."));
@@ -297,39 +359,24 @@ public class TimelapseApp extends Application {
         gridPane.add(showButton, 1, rowIndex++);
 	        
         runButton.addEventHandler(ActionEvent.ACTION, event -> {
-        	List<String> command = new ArrayList<>();
-        	command.add("ffmpeg");
-        	command.add("-y");
-        	command.add("-r");
-        	command.add(String.valueOf(imagesFrameRateProperty.get()));
-        	command.add("-start_number");
-        	command.add(String.valueOf(imageStartNumberProperty.get()));
-        	command.add("-i");
-        	command.add(imagePatternProperty.get());
-        	command.add("-s");
-        	command.add(videoResolutionWidthProperty.get() + "x" + videoResolutionHeightProperty.get());
-        	if (useInterpolatedFilterProperty.get()) {
-        		command.add("-vf");
-	        	command.add("framerate=fps=" + interpolatedFrameRateProperty.get() + ":interp_start=" + interpolatedStartProperty.get() + ":interp_end=" + interpolatedEndProperty.get() + ":scene=100");        	
+        	List<String> problems = validateFfmpegCapabilities();
+        	if (!problems.isEmpty()) {
+        		commandOutputTextArea.setText(String.join("\n", problems));
+        		return;
         	}
-        	command.add("-vcodec");
-        	command.add("mpeg4");
-        	command.add("-q:v");
-        	command.add(String.valueOf(videoQualityProperty.get()));
-        	command.add(videoFileNameProperty.get());
-
-        	commandOutputTextArea.setText("> ");
-        	commandOutputTextArea.appendText(commandToString(command));
-        	commandOutputTextArea.appendText("\n\n");
+
+        	commandOutputTextArea.setText("");
+        	progressProperty.set(0);
+        	progressMessageProperty.set("");
         	
         	runButton.setDisable(true);
         	showButton.setDisable(true);
         	
-        	runCommand(
-				command,
-				imageDirectoryProperty.get(),
+        	renderVideo(
+				settings.copy(),
 				(output) -> commandOutputTextArea.appendText(output),
 				(success) -> {
+					progressMessageProperty.set(success ? "Finished" : "Failed");
 					runButton.setDisable(false);
 		        	showButton.setDisable(false);
 				});
@@ -337,7 +384,7 @@ public class TimelapseApp extends Application {
 
         showButton.addEventHandler(ActionEvent.ACTION, event -> {
         	try {
-				File videoFile = Paths.get(imageDirectoryProperty.get(), videoFileNameProperty.get()).toFile();
+				File videoFile = Paths.get(settings.imageDirectoryProperty().get(), settings.videoFileNameProperty().get()).toFile();
 				Desktop.getDesktop().open(videoFile);
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -347,107 +394,121 @@ public class TimelapseApp extends Application {
         return gridPane;
 	}
 
-	private String commandToString(List<String> command) {
-		StringBuilder result = new StringBuilder();
-		
-		for (String string : command) {
-			if (result.length() != 0) {
-				result.append(' ');
-			}
-			
-			if (string.contains(" ") || string.isEmpty()) {
-				result.append('"');
-				result.append(string);
-				result.append('"');
-			} else {
-				result.append(string);
-			}
+	private List<String> validateFfmpegCapabilities() {
+		FfmpegCapabilities capabilities = ffmpegCapabilitiesProperty.get();
+		if (capabilities == null) {
+			// still probing - let ffmpeg report any problems itself
+			return new ArrayList<>();
 		}
-		
-		return result.toString();
+
+		return settings.validate(capabilities);
 	}
 
-	private void updateImageDirectory() {
-		String directory = imageDirectoryProperty.get();
-		if (directory == null) {
+	private void scheduleUpdate() {
+		if (applyingUpdate) {
 			return;
 		}
-		
-		Path directoryPath = Paths.get(directory);
-		try {
-			Optional<Entry<String, List<ImageFilenameParser>>> optionalParsers = Files.list(directoryPath)
-				.filter(Files::isReadable)
-				.filter(path -> isImageFile(path))
-				.map(path -> new ImageFilenameParser(path.getFileName().toString()))
-				.filter(parser -> parser.isValid())
-				.collect(Collectors.groupingBy(parser -> parser.getFilePattern()))
-				.entrySet().stream()
-				.sorted((entry1, entry2) -> -Integer.compare(entry1.getValue().size(), entry2.getValue().size()))
-				.findFirst();
-			
-			if (optionalParsers.isPresent()) {
-				List<ImageFilenameParser> parsers = optionalParsers.get().getValue();
-				
-				ImageFilenameParser firstParser = parsers.get(0);
-				
-				List<Integer> sortedNumbers = parsers.stream()
-						.map(parser -> parser.getNumber())
-						.sorted()
-						.collect(Collectors.toList());
-				
-				int firstNumber = sortedNumbers.get(0);
-				int lastNumber = findLastConsecutiveNumber(sortedNumbers);
-				int countNumbers = lastNumber - firstNumber;
-				
-				if (imageAutoFillProperty.get()) {
-					imagePatternProperty.set(firstParser.getFilePattern());
-					imageStartNumberProperty.set(firstNumber);
-				}
-				
-				inputValidationMessage.set(countNumbers + " images found in directory, starting at number " + firstNumber + ".");
-			} else {
-				inputValidationMessage.set("No images found in directory.");
+
+		RenderSettings snapshot = settings.copy();
+		boolean scan = scanPending;
+		ImageDirectory imageDirectory = lastImageDirectory;
+		FfmpegCapabilities capabilities = ffmpegCapabilitiesProperty.get();
+
+		updateScheduler.schedule(
+				() -> computeUpdate(snapshot, scan, imageDirectory, capabilities),
+				update -> applyUpdate(update),
+				exception -> {
+					imageProperty.set(null);
+					commandProperty.set("Update failed: " + exception);
+				});
+	}
+
+	private Update computeUpdate(RenderSettings snapshot, boolean scan, ImageDirectory imageDirectory, FfmpegCapabilities capabilities) {
+		Update update = new Update();
+		update.settings = snapshot;
+		update.capabilities = capabilities;
+
+		if (scan) {
+			update.imageDirectory = ImageDirectory.scan(snapshot.imageDirectoryProperty().get());
+			if (update.imageDirectory.isValid() && snapshot.imageAutoFillProperty().get()) {
+				snapshot.imagePatternProperty().set(update.imageDirectory.getFilePattern());
+				snapshot.imageStartNumberProperty().set(update.imageDirectory.getFirstNumber());
 			}
-		} catch (NotDirectoryException e) {
-			inputValidationMessage.set("Not a directory.");
-		} catch (NoSuchFileException e) {
-			inputValidationMessage.set("Directory not found.");
-		} catch (IOException e) {
-			inputValidationMessage.set("Directory could not be read.");
+			imageDirectory = update.imageDirectory;
 		}
+
+		update.image = loadImage(snapshot);
+		if (snapshot.imageDirectoryProperty().get() == null || snapshot.imagePatternProperty().get() == null) {
+			update.command = "No image directory and pattern specified.";
+		} else {
+			update.command = snapshot.createCommands(countImages(snapshot, imageDirectory), Paths.get("ffmpeg2pass")).stream()
+					.map(command -> VideoRenderer.commandToString(command))
+					.collect(Collectors.joining("\n"));
+		}
+		update.problems = capabilities == null ? new ArrayList<>() : snapshot.validate(capabilities);
+
+		return update;
 	}
-	
-	private int findLastConsecutiveNumber(List<Integer> sortedNumbers) {
-		int number = sortedNumbers.get(0);
-		
-		while (sortedNumbers.contains(number)) {
-			number++;
+
+	/**
+	 * Counts the images for the bitrate of {@link RateControl#TARGET_SIZE}, reusing the count of the directory scan if possible.
+	 */
+	private static int countImages(RenderSettings settings, ImageDirectory imageDirectory) {
+		if (settings.videoRateControlProperty().get() != RateControl.TARGET_SIZE) {
+			return 0;
 		}
-		
-		return number;
+
+		if (imageDirectory != null && imageDirectory.isValid() && settings.imageAutoFillProperty().get()) {
+			return imageDirectory.getImageCount();
+		}
+
+		return ImageDirectory.countImages(settings);
 	}
 
-	private boolean isImageFile(Path path) {
-		String string = path.getFileName().toString();
-		for (String extension : Arrays.asList(".jpg", ".JPG", ".jpeg", ".png", ".PNG")) {
-			if (string.endsWith(extension)) {
-				return true;
+	private void applyUpdate(Update update) {
+		applyingUpdate = true;
+		try {
+			if (update.imageDirectory != null) {
+				scanPending = false;
+				lastImageDirectory = update.imageDirectory;
+				if (update.imageDirectory.isValid() && settings.imageAutoFillProperty().get()) {
+					settings.imagePatternProperty().set(update.settings.imagePatternProperty().get());
+					settings.imageStartNumberProperty().set(update.settings.imageStartNumberProperty().get());
+				}
+				inputValidationMessage.set(update.imageDirectory.getMessage());
+			}
+
+			imageProperty.set(update.image);
+			commandProperty.set(update.command);
+
+			if (update.capabilities == null) {
+				ffmpegInfoProperty.set(ffmpegProbeError != null ? ffmpegProbeError : "Probing ffmpeg...");
+			} else {
+				List<String> info = new ArrayList<>();
+				info.add(update.capabilities.toString());
+				info.addAll(update.problems);
+				ffmpegInfoProperty.set(String.join("\n", info));
 			}
+		} finally {
+			applyingUpdate = false;
 		}
-		return false;
 	}
 
-	private void updateImage() {
-		if (imagePatternProperty.get() == null) {
-			return;
-
+	private static Image loadImage(RenderSettings settings) {
+		String directory = settings.imageDirectoryProperty().get();
+		String pattern = settings.imagePatternProperty().get();
+		if (directory == null || pattern == null) {
+			return null;
 		}
+
 		try {
-			Path path = Paths.get(imageDirectoryProperty.get(), String.format(imagePatternProperty.get(), imageStartNumberProperty.get()));
-			Image image = new Image(path.toUri().toString());
-			imageProperty.set(image);
+			Path path = Paths.get(directory, String.format(pattern, settings.imageStartNumberProperty().get()));
+			if (!Files.isRegularFile(path)) {
+				return null;
+			}
+			return new Image(path.toUri().toString(), PREVIEW_SIZE, PREVIEW_SIZE, true, true, false);
 		} catch (IllegalArgumentException ex) {
-			imageProperty.set(null);
+			return null;
 		}
 	}
 
@@ -581,31 +642,45 @@ public class TimelapseApp extends Application {
 		GridPane.setValignment(labelText, VPos.TOP);
 	}
 
-	private void runCommand(List<String> command, String directory, Consumer<String> outputConsumer, Consumer<Boolean> finishedConsumer) {
-		CommandExecutor commandExecutor = new CommandExecutor(command, directory, new CommandExecutorListener() {
+	private void renderVideo(RenderSettings settings, Consumer<String> outputConsumer, Consumer<Boolean> finishedConsumer) {
+		VideoRenderer videoRenderer = new VideoRenderer(settings, new RenderListener() {
 			@Override
 			public void addOutput(String output) {
 				Platform.runLater(() -> {
 					outputConsumer.accept(output);
 				});
 			}
-			
+
 			@Override
-			public void addError(String error) {
+			public void progress(double progress, long remainingSeconds) {
 				Platform.runLater(() -> {
-					outputConsumer.accept(error);
+					progressProperty.set(progress);
+					progressMessageProperty.set(remainingSeconds < 0 ? "" : "ETA " + formatDuration(remainingSeconds));
 				});
 			}
-			
-			@Override
-			public void finished() {
-				finishedConsumer.accept(true);
-			}
 		});
-		
-		commandExecutor.runAsync();
+
+		new Thread(() -> {
+			boolean success = videoRenderer.render();
+			Platform.runLater(() -> {
+				finishedConsumer.accept(success);
+			});
+		}).start();
+	}
+
+	private static String formatDuration(long seconds) {
+		return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
 	}
 	
+	private static class Update {
+		RenderSettings settings;
+		FfmpegCapabilities capabilities;
+		ImageDirectory imageDirectory;
+		Image image;
+		String command;
+		List<String> problems;
+	}
+
 	public static void main(String[] args) {
 		System.setProperty("glass.accessible.force", "false");
 		launch(args);
@@ -0,0 +1,342 @@
+package ch.obermuhlner.timelapse;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.timelapse.VideoRenderer.RenderListener;
+
+/**
+ * Headless daemon that watches an inbox directory and renders every image directory
+ * that has been quiet for a configured time.
+ *
+ * A directory counts as done once it contains the output video (only moved into place after a successful render) or the error log,
+ * so no state needs to be kept in memory for finished directories.
+ */
+public class TimelapseDaemon {
+
+	private static final String ERROR_LOG_FILE_NAME = "timelapse-error.log";
+
+	private static final long POLL_MILLIS = 5000;
+	private static final int HISTORY_SIZE = 50;
+	private static final int ERROR_LINES = 50;
+
+	private final Path inbox;
+	private final long quietMillis;
+	private final Path statusFile;
+	private final RenderSettings profile;
+	private final ExecutorService jobExecutor;
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+	private final Map<Path, Long> waitingDirectories = new LinkedHashMap<>();
+	private final Set<Path> queuedDirectories = ConcurrentHashMap.newKeySet();
+	private final Map<Path, String> runningDirectories = new ConcurrentHashMap<>();
+	private final Deque<String> history = new ArrayDeque<>();
+
+	public TimelapseDaemon(Path inbox, long quietMillis, int maxJobs, Path statusFile, RenderSettings profile) throws IOException {
+		this.inbox = inbox;
+		this.quietMillis = quietMillis;
+		this.statusFile = statusFile;
+		this.profile = profile;
+
+		jobExecutor = Executors.newFixedThreadPool(maxJobs);
+		watchService = inbox.getFileSystem().newWatchService();
+	}
+
+	/**
+	 * Watches the inbox until the thread is interrupted.
+	 */
+	public void run() throws IOException {
+		inbox.register(watchService, ENTRY_CREATE);
+		watchInboxDirectories();
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				while (key != null) {
+					handleEvents(key);
+					key = watchService.poll();
+				}
+
+				submitQuietDirectories();
+				writeStatus();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			jobExecutor.shutdownNow();
+			watchService.close();
+		}
+	}
+
+	private void watchInboxDirectories() throws IOException {
+		try (DirectoryStream<Path> directories = Files.newDirectoryStream(inbox, Files::isDirectory)) {
+			for (Path directory : directories) {
+				watchDirectory(directory);
+			}
+		}
+	}
+
+	private void handleEvents(WatchKey key) {
+		Path directory = watchedDirectories.get(key);
+		long now = System.currentTimeMillis();
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				for (Entry<Path, Long> entry : waitingDirectories.entrySet()) {
+					entry.setValue(now);
+				}
+				if (directory == null) {
+					// events for new directories were lost - list the inbox again
+					try {
+						watchInboxDirectories();
+					} catch (IOException e) {
+						addHistory("failed to list " + inbox + ": " + e);
+					}
+				}
+			} else if (directory == null) {
+				Path child = inbox.resolve((Path) event.context());
+				if (Files.isDirectory(child)) {
+					watchDirectory(child);
+				}
+			} else if (waitingDirectories.containsKey(directory)) {
+				waitingDirectories.put(directory, now);
+			}
+		}
+
+		if (!key.reset() && directory != null) {
+			// directory was deleted
+			watchedDirectories.remove(key);
+			waitingDirectories.remove(directory);
+		}
+	}
+
+	private void watchDirectory(Path directory) {
+		if (isDone(directory) || waitingDirectories.containsKey(directory) || queuedDirectories.contains(directory) || runningDirectories.containsKey(directory)) {
+			return;
+		}
+
+		try {
+			WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+			watchedDirectories.put(key, directory);
+			waitingDirectories.put(directory, System.currentTimeMillis());
+		} catch (IOException e) {
+			// renamed, removed or not readable - ignore this directory but keep watching the others
+			addHistory("ignored " + directory + ": " + e);
+		}
+	}
+
+	private boolean isDone(Path directory) {
+		return Files.exists(directory.resolve(profile.videoFileNameProperty().get())) || Files.exists(directory.resolve(ERROR_LOG_FILE_NAME));
+	}
+
+	private void submitQuietDirectories() {
+		long now = System.currentTimeMillis();
+
+		Iterator<Entry<Path, Long>> iterator = waitingDirectories.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<Path, Long> entry = iterator.next();
+			if (now - entry.getValue() >= quietMillis) {
+				Path directory = entry.getKey();
+
+				if (!Files.isDirectory(directory)) {
+					// renamed or removed while still watched
+					iterator.remove();
+					unwatchDirectory(directory);
+					continue;
+				}
+
+				ImageDirectory imageDirectory = ImageDirectory.scan(directory.toString());
+				if (!imageDirectory.isValid()) {
+					// keep watching until images arrive
+					entry.setValue(now);
+					continue;
+				}
+
+				iterator.remove();
+				unwatchDirectory(directory);
+
+				RenderSettings settings = profile.copy();
+				settings.imageDirectoryProperty().set(directory.toString());
+				settings.imagePatternProperty().set(imageDirectory.getFilePattern());
+				settings.imageStartNumberProperty().set(imageDirectory.getFirstNumber());
+
+				queuedDirectories.add(directory);
+				jobExecutor.submit(() -> render(directory, settings, imageDirectory.getImageCount()));
+			}
+		}
+	}
+
+	private void unwatchDirectory(Path directory) {
+		Iterator<Entry<WatchKey, Path>> iterator = watchedDirectories.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<WatchKey, Path> entry = iterator.next();
+			if (entry.getValue().equals(directory)) {
+				entry.getKey().cancel();
+				iterator.remove();
+			}
+		}
+	}
+
+	private void render(Path directory, RenderSettings settings, int imageCount) {
+		runningDirectories.put(directory, "starting");
+		queuedDirectories.remove(directory);
+		try {
+			Deque<String> lastLines = new ArrayDeque<>();
+			VideoRenderer videoRenderer = new VideoRenderer(settings, new RenderListener() {
+				@Override
+				public void addOutput(String output) {
+					lastLines.addLast(output.trim());
+					if (lastLines.size() > ERROR_LINES) {
+						lastLines.removeFirst();
+					}
+				}
+
+				@Override
+				public void progress(double progress, long remainingSeconds) {
+					runningDirectories.put(directory, String.format("%.0f%%, %d s remaining", progress * 100, remainingSeconds));
+				}
+			});
+
+			if (videoRenderer.render()) {
+				addHistory("rendered " + directory + ": " + imageCount + " images");
+			} else if (Thread.currentThread().isInterrupted()) {
+				// daemon is shutting down - no error log, so the directory is rendered again after a restart
+				addHistory("interrupted " + directory);
+			} else {
+				Files.write(directory.resolve(ERROR_LOG_FILE_NAME), lastLines, StandardCharsets.UTF_8);
+				addHistory("failed " + directory + ": see " + ERROR_LOG_FILE_NAME);
+			}
+		} catch (Exception e) {
+			addHistory("failed " + directory + ": " + e);
+		} finally {
+			runningDirectories.remove(directory);
+		}
+	}
+
+	private void addHistory(String message) {
+		String entry = new Date() + " " + message;
+		System.out.println(entry);
+
+		synchronized (history) {
+			history.addFirst(entry);
+			if (history.size() > HISTORY_SIZE) {
+				history.removeLast();
+			}
+		}
+	}
+
+	private void writeStatus() {
+		if (statusFile == null) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		List<String> lines = new ArrayList<>();
+		lines.add("Updated: " + new Date(now));
+		lines.add("Inbox: " + inbox);
+		lines.add("");
+		lines.add("Waiting (" + waitingDirectories.size() + "):");
+		for (Entry<Path, Long> entry : waitingDirectories.entrySet()) {
+			lines.add("  " + entry.getKey() + " (quiet for " + TimeUnit.MILLISECONDS.toSeconds(now - entry.getValue()) + " s)");
+		}
+		lines.add("Queued (" + queuedDirectories.size() + "):");
+		for (Path directory : queuedDirectories) {
+			lines.add("  " + directory);
+		}
+		lines.add("Running (" + runningDirectories.size() + "):");
+		for (Entry<Path, String> entry : runningDirectories.entrySet()) {
+			lines.add("  " + entry.getKey() + " (" + entry.getValue() + ")");
+		}
+		lines.add("History:");
+		synchronized (history) {
+			for (String entry : history) {
+				lines.add("  " + entry);
+			}
+		}
+
+		try {
+			Path tempFile = statusFile.resolveSibling(statusFile.getFileName() + ".tmp");
+			Files.write(tempFile, lines, StandardCharsets.UTF_8);
+			Files.move(tempFile, statusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts the daemon with the configuration properties file given as argument.
+	 *
+	 * The configuration contains the daemon settings <code>inbox</code>, <code>quietMinutes</code>, <code>maxJobs</code>
+	 * and <code>statusFile</code> together with the default render settings (see {@link RenderSettings#load(Properties)}).
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: TimelapseDaemon <daemon.properties>");
+			System.exit(1);
+		}
+
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+
+		String inbox = properties.getProperty("inbox");
+		if (inbox == null) {
+			System.err.println("Missing property: inbox");
+			System.exit(1);
+		}
+		long quietMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(properties.getProperty("quietMinutes", "5")));
+		int maxJobs = Integer.parseInt(properties.getProperty("maxJobs", "1"));
+		String statusFile = properties.getProperty("statusFile");
+
+		RenderSettings profile = new RenderSettings();
+		profile.load(properties);
+
+		FfmpegCapabilities capabilities = new FfmpegProbe(profile.ffmpegProperty().get()).probe();
+		List<String> problems = profile.validate(capabilities);
+		if (!problems.isEmpty()) {
+			problems.forEach(System.err::println);
+			System.exit(1);
+		}
+		System.out.println(capabilities);
+
+		TimelapseDaemon daemon = new TimelapseDaemon(
+				Paths.get(inbox).toAbsolutePath(),
+				quietMillis,
+				maxJobs,
+				statusFile == null ? null : Paths.get(statusFile).toAbsolutePath(),
+				profile);
+		daemon.run();
+	}
+}
@@ -0,0 +1,183 @@
+package ch.obermuhlner.timelapse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import ch.obermuhlner.timelapse.CommandExecutor.CommandExecutorListener;
+
+/**
+ * Renders a video by running the ffmpeg commands of the {@link RenderSettings} one after the other
+ * and reports the progress over all passes.
+ */
+public class VideoRenderer {
+
+	private static final Pattern FRAME_PATTERN = Pattern.compile("frame=\\s*([0-9]+)");
+
+	private final RenderSettings settings;
+	private final RenderListener listener;
+
+	public VideoRenderer(RenderSettings settings, RenderListener listener) {
+		this.settings = settings;
+		this.listener = listener;
+	}
+
+	/**
+	 * Renders the video - blocks until all passes are finished.
+	 *
+	 * The video is written to a partial file that is moved to the video file name only on success,
+	 * so an interrupted render never leaves an incomplete file under the final name.
+	 *
+	 * @return <code>true</code> if the video was created successfully
+	 */
+	public boolean render() {
+		int imageCount = ImageDirectory.countImages(settings);
+		if (imageCount == 0) {
+			listener.addOutput("No images found matching the image pattern and start number.\n");
+			return false;
+		}
+
+		Path videoFile = Paths.get(settings.imageDirectoryProperty().get()).resolve(settings.videoFileNameProperty().get());
+		Path partialVideoFile = videoFile.resolveSibling(toPartialFileName(videoFile.getFileName().toString()));
+		RenderSettings partialSettings = settings.copy();
+		partialSettings.videoFileNameProperty().set(partialVideoFile.toString());
+
+		Path passLogDirectory = null;
+		try {
+			if (settings.isTwoPass()) {
+				passLogDirectory = Files.createTempDirectory("timelapse");
+				listener.addOutput("Two pass encoding with " + settings.getBitrate(imageCount) + " kbit/s.\n\n");
+			}
+
+			List<List<String>> commands = partialSettings.createCommands(imageCount, passLogDirectory == null ? null : passLogDirectory.resolve("ffmpeg2pass"));
+			long totalFrames = settings.getOutputFrameCount(imageCount);
+			long startMillis = System.currentTimeMillis();
+
+			for (int pass = 0; pass < commands.size(); pass++) {
+				List<String> command = commands.get(pass);
+				listener.addOutput("> " + commandToString(command) + "\n\n");
+
+				int passIndex = pass;
+				CommandExecutor commandExecutor = new CommandExecutor(command, settings.imageDirectoryProperty().get(), new CommandExecutorListener() {
+					@Override
+					public void addOutput(String output) {
+						listener.addOutput(output);
+					}
+
+					@Override
+					public void addError(String error) {
+						listener.addOutput(error);
+
+						Matcher matcher = FRAME_PATTERN.matcher(error);
+						if (matcher.find()) {
+							long frame = Long.parseLong(matcher.group(1));
+							double passProgress = Math.min(1.0, (double) frame / totalFrames);
+							reportProgress((passIndex + passProgress) / commands.size(), startMillis);
+						}
+					}
+
+					@Override
+					public void finished() {
+					}
+				});
+				commandExecutor.run();
+
+				if (Thread.currentThread().isInterrupted()) {
+					listener.addOutput("\nRendering interrupted.\n");
+					return false;
+				}
+				if (commandExecutor.getExitValue() != 0) {
+					listener.addOutput("\nffmpeg failed with exit value " + commandExecutor.getExitValue() + ".\n");
+					return false;
+				}
+				reportProgress((pass + 1.0) / commands.size(), startMillis);
+			}
+
+			Files.move(partialVideoFile, videoFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			listener.addOutput(e + "\n");
+			return false;
+		} finally {
+			if (passLogDirectory != null) {
+				deleteRecursively(passLogDirectory);
+			}
+			try {
+				Files.deleteIfExists(partialVideoFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Inserts <code>.partial</code> before the extension, so that ffmpeg still detects the output format from the extension.
+	 */
+	private static String toPartialFileName(String fileName) {
+		int extensionIndex = fileName.lastIndexOf('.');
+		if (extensionIndex <= 0) {
+			return fileName + ".partial";
+		}
+		return fileName.substring(0, extensionIndex) + ".partial" + fileName.substring(extensionIndex);
+	}
+
+	private void reportProgress(double progress, long startMillis) {
+		long remainingSeconds = -1;
+		if (progress > 0) {
+			long elapsedMillis = System.currentTimeMillis() - startMillis;
+			remainingSeconds = (long) (elapsedMillis * (1.0 - progress) / progress / 1000);
+		}
+		listener.progress(progress, remainingSeconds);
+	}
+
+	private static void deleteRecursively(Path directory) {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+				try {
+					Files.delete(path);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static String commandToString(List<String> command) {
+		StringBuilder result = new StringBuilder();
+
+		for (String string : command) {
+			if (result.length() != 0) {
+				result.append(' ');
+			}
+
+			if (string.contains(" ") || string.isEmpty()) {
+				result.append('"');
+				result.append(string);
+				result.append('"');
+			} else {
+				result.append(string);
+			}
+		}
+
+		return result.toString();
+	}
+
+	public static interface RenderListener {
+		void addOutput(String output);
+
+		/**
+		 * @param progress the progress over all passes, between 0.0 and 1.0
+		 * @param remainingSeconds the estimated remaining time in seconds, or -1 if unknown
+		 */
+		void progress(double progress, long remainingSeconds);
+	}
+}